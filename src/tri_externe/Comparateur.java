@@ -60,42 +60,105 @@ class Comparateur implements Comparator<String[]> {
 
     @Override
     public int compare(String[] t1, String[] t2) {
-        for (int k = 0; k < indices.length; k++) {
-            int index = indices[k];
-            Type type = types[k];
-
-            String a = (t1[index] == null) ? "" : t1[index].trim();
-            String b = (t2[index] == null) ? "" : t2[index].trim();
-
-            // Gestion des vides/null : le vide est considéré comme plus petit
-            if (a.isEmpty() && b.isEmpty())
-                continue;
-            if (a.isEmpty())
-                return -1;
-            if (b.isEmpty())
-                return 1;
-
-            int c;
-            switch (type) {
-                case NUM:
-                    c = compareNumeriqueOuLex(a, b);
-                    break;
-                case TXT:
-                    c = a.compareTo(b);
-                    break;
-                default: // AUTO
-                    if (estNumerique(a) && estNumerique(b))
-                        c = compareNumerique(a, b);
-                    else
-                        c = a.compareTo(b);
-                    break;
-            }
+        return compareDepuis(t1, t2, 0);
+    }
+
+    /**
+     * Compare à partir de la k-ième colonne de tri (les colonnes avant k sont
+     * supposées égales).
+     */
+    public int compareDepuis(String[] t1, String[] t2, int depuis) {
+        for (int k = depuis; k < indices.length; k++) {
+            int c = compareColonne(t1, t2, k);
             if (c != 0)
                 return c; // différence trouvée -> on renvoie
         }
         return 0; // toutes les colonnes testées sont égales
     }
 
+    /**
+     * Première colonne de tri (à partir de depuis) où t1 et t2 diffèrent,
+     * indices.length si elles sont égales. Sert au codage offset-valeur.
+     */
+    public int premiereDifference(String[] t1, String[] t2, int depuis) {
+        for (int k = depuis; k < indices.length; k++) {
+            if (compareColonne(t1, t2, k) != 0)
+                return k;
+        }
+        return indices.length;
+    }
+
+    /** Compare t1 et t2 sur la k-ième colonne de tri uniquement. */
+    public int compareColonne(String[] t1, String[] t2, int k) {
+        int index = indices[k];
+        Type type = types[k];
+
+        String a = (t1[index] == null) ? "" : t1[index].trim();
+        String b = (t2[index] == null) ? "" : t2[index].trim();
+
+        // Gestion des vides/null : le vide est considéré comme plus petit
+        if (a.isEmpty() && b.isEmpty())
+            return 0;
+        if (a.isEmpty())
+            return -1;
+        if (b.isEmpty())
+            return 1;
+
+        switch (type) {
+            case NUM:
+                return compareNumeriqueOuLex(a, b);
+            case TXT:
+                return a.compareTo(b);
+            default: // AUTO
+                if (estNumerique(a) && estNumerique(b))
+                    return compareNumerique(a, b);
+                return a.compareTo(b);
+        }
+    }
+
+    // --- codage offset-valeur ---
+
+    /** valeur de code inconnue : il faut comparer les chaînes */
+    public static final long INCONNU = -1;
+
+    /** drapeau des valeurs texte (préfixe) ; sans lui : vide (0) ou nombre + 1 */
+    private static final long TEXTE = 1L << 62;
+
+    /**
+     * Valeur de la k-ième colonne de tri pour le codage offset-valeur : un long
+     * dont l'ordre respecte celui de compareColonne entre deux valeurs de même
+     * nature (deux nombres, ou deux textes), sans être forcément strict.
+     * - vide : 0 ; nombre (NUM/AUTO, au plus 18 chiffres) : valeur + 1
+     * - texte : TEXTE | 4 premiers caractères (15 bits chacun, 0 = fin)
+     * - sinon INCONNU.
+     */
+    public long valeurCode(String[] t, int k) {
+        String s = (t[indices[k]] == null) ? "" : t[indices[k]].trim();
+        if (s.isEmpty())
+            return 0;
+        if (types[k] != Type.TXT && estNumerique(s))
+            return (s.length() <= 18) ? Long.parseLong(s) + 1 : INCONNU;
+        long v = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = (i < s.length()) ? s.charAt(i) + 1 : 0;
+            if (c >= (1 << 15))
+                return INCONNU;
+            v = (v << 15) | c;
+        }
+        return TEXTE | v;
+    }
+
+    /**
+     * Compare deux valeurs de code (même colonne) : négatif/positif si l'ordre
+     * est décidé, 0 s'il faut comparer les chaînes (égales, inconnues, ou
+     * nombre contre texte).
+     */
+    public static int compareValeursCode(long a, long b) {
+        if (a == INCONNU || b == INCONNU || ((a ^ b) & TEXTE) != 0)
+            return 0;
+        return Long.compare(a, b);
+    }
+
     // --- outils ---
 
     /** Compare numériquement (long). Suppose a et b numériques. */
@@ -0,0 +1,247 @@
+/**
+ * IndexEpars.java
+ *
+ * Index épars (sparse index) sur un fichier CSV trié : une entrée toutes les
+ * PAS lignes, avec la clé de tri et la position (en octets) de la ligne.
+ *
+ * Format du fichier index (sorted.csv.idx) :
+ * - ligne 1 : OFFSET;col1;col2;...   (colonnes de tri)
+ * - ligne 2 : TYPES;type1;type2;...  (NUM/TXT/AUTO, comme pour le tri)
+ * - ensuite : offset;clé1;clé2;...
+ *
+ * Le fichier trié et l'index sont en UTF-8 (offsets en octets UTF-8), quel que
+ * soit l'encodage par défaut de la plateforme.
+ *
+ * Usage: java IndexEpars <fichier_trie.csv> <bas1;bas2;...> [<haut1;haut2;...>]
+ * Exemple: java IndexEpars output/sorted.csv "01"
+ *          java IndexEpars output/sorted.csv "01" "05"
+ *
+ * @author Erkin Tunc BOYA
+ * @version 1.0
+ * @since   2025-10-01
+ *
+ * @see     TriExterne
+ * @see     Comparateur
+ */
+
+package tri_externe;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+public class IndexEpars {
+    // une entrée d'index toutes les PAS lignes
+    public static int PAS = 100;
+
+    public final String path; // chemin du fichier CSV trié
+    public final String[] entete; // entête du fichier CSV trié
+    public final String[] colonnes; // colonnes de tri (ordre de priorité)
+    public final Comparateur.Type[] types; // types de comparaison par colonne
+
+    private final int[] indices; // position des colonnes de tri dans l'entête
+    private final long[] offsets; // offset (octets) de chaque entrée
+    private final String[][] cles; // n-uplets « creux » : seules les colonnes de tri sont remplies
+
+    /**
+     * Charge l'index associé à un fichier trié (fichier + ".idx").
+     *
+     * @param path le chemin du fichier CSV trié
+     * @throws IOException si le fichier ou son index est illisible
+     */
+    public IndexEpars(String path) throws IOException {
+        this.path = path;
+
+        try (BufferedReader headerReader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String headerLine = headerReader.readLine();
+            if (headerLine == null) {
+                throw new IOException("Fichier CSV vide: " + path);
+            }
+            this.entete = headerLine.split(";", -1);
+        }
+
+        List<Long> offs = new ArrayList<>();
+        List<String[]> keys = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(nomIndex(path)), StandardCharsets.UTF_8))) {
+            String l1 = reader.readLine();
+            String l2 = reader.readLine();
+            if (l1 == null || l2 == null || !l1.startsWith("OFFSET;") || !l2.startsWith("TYPES;")) {
+                throw new IOException("Index invalide: " + nomIndex(path));
+            }
+            String[] cols = l1.split(";", -1);
+            this.colonnes = Arrays.copyOfRange(cols, 1, cols.length);
+            this.types = TriExterne.resoudreTypes(l2.substring("TYPES;".length()), colonnes.length);
+            this.indices = TriExterne.resoudreIndices(entete, colonnes);
+
+            String ligne;
+            while ((ligne = reader.readLine()) != null) {
+                String[] parts = TriExterne.nupletDepuis(ligne);
+                offs.add(Long.parseLong(parts[0]));
+                keys.add(nupletCreux(Arrays.copyOfRange(parts, 1, parts.length)));
+            }
+        }
+
+        this.offsets = new long[offs.size()];
+        for (int i = 0; i < offsets.length; i++)
+            offsets[i] = offs.get(i);
+        this.cles = keys.toArray(new String[0][]);
+    }
+
+    /**
+     * Parcourt les n-uplets dont la clé est dans [bas, haut] (bornes incluses).
+     * <p>
+     * bas et haut peuvent être des préfixes de la clé (ex: CODDEP seul pour un
+     * fichier trié par CODDEP;CODCOM) : seules leurs premières colonnes sont
+     * comparées, avec le même ordre que le tri.
+     * </p>
+     *
+     * Etapes:
+     * - recherche dichotomique de la dernière entrée strictement < bas
+     * - positionnement (seek) sur son offset
+     * - lecture séquentielle jusqu'à la première clé > haut
+     *
+     * @param bas    borne basse (valeurs des colonnes de tri, dans l'ordre)
+     * @param haut   borne haute (même nombre de valeurs que bas)
+     * @param action appelée pour chaque n-uplet trouvé
+     * @return le nombre de n-uplets trouvés
+     * @throws IOException en cas d'erreur de lecture
+     */
+    public int rechercher(String[] bas, String[] haut, Consumer<String[]> action) throws IOException {
+        if (bas.length == 0 || bas.length > colonnes.length || haut.length != bas.length) {
+            throw new IllegalArgumentException(
+                    "bas et haut doivent avoir entre 1 et " + colonnes.length + " valeurs (même nombre)");
+        }
+        Comparateur prefixe = new Comparateur(Arrays.copyOf(indices, bas.length),
+                Arrays.copyOf(types, bas.length));
+        String[] nBas = nupletCreux(bas);
+        String[] nHaut = nupletCreux(haut);
+
+        // Dernière entrée dont la clé est strictement < bas (sinon début des données)
+        int lo = 0, hi = cles.length - 1, trouve = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (prefixe.compare(cles[mid], nBas) < 0) {
+                trouve = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        int n = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(path, "r")) {
+            if (trouve != -1)
+                raf.seek(offsets[trouve]);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Channels.newInputStream(raf.getChannel()), StandardCharsets.UTF_8));
+            if (trouve == -1)
+                reader.readLine(); // sauter l'entête
+
+            String ligne;
+            while ((ligne = reader.readLine()) != null) {
+                String[] nuplet = TriExterne.nupletDepuis(ligne);
+                if (prefixe.compare(nuplet, nBas) < 0)
+                    continue;
+                if (prefixe.compare(nuplet, nHaut) > 0)
+                    break; // fichier trié : plus rien à trouver
+                action.accept(nuplet);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** Nom du fichier index associé à un fichier trié. */
+    public static String nomIndex(String path) {
+        return path + ".idx";
+    }
+
+    /** Construit un n-uplet de la largeur de l'entête, avec seulement les colonnes de tri. */
+    private String[] nupletCreux(String[] valeurs) {
+        String[] nuplet = new String[entete.length];
+        for (int k = 0; k < valeurs.length; k++)
+            nuplet[indices[k]] = valeurs[k].trim();
+        return nuplet;
+    }
+
+    /**
+     * Écrit l'index pendant l'écriture du fichier trié : on lui signale chaque
+     * ligne écrite (entête comprise) pour suivre la position en octets.
+     */
+    static class Ecrivain implements Closeable {
+        private final FileWriter fw;
+        private final int[] indices;
+        private long offset = 0; // position de la prochaine ligne dans le fichier trié
+        private long lignes = 0; // nb de n-uplets vus (hors entête)
+
+        /**
+         * @param idxPath     le chemin du fichier index à créer
+         * @param entete      l'entête du fichier trié
+         * @param comparateur le comparateur utilisé pour le tri
+         */
+        Ecrivain(String idxPath, String[] entete, Comparateur comparateur) throws IOException {
+            this.fw = new FileWriter(idxPath, StandardCharsets.UTF_8);
+            this.indices = comparateur.indices;
+
+            StringBuilder l1 = new StringBuilder("OFFSET");
+            StringBuilder l2 = new StringBuilder("TYPES");
+            for (int k = 0; k < indices.length; k++) {
+                l1.append(';').append(entete[indices[k]]);
+                l2.append(';').append(comparateur.types[k].name());
+            }
+            fw.append(l1).append('\n').append(l2).append('\n');
+        }
+
+        /** Signale l'entête (ou toute ligne hors données) du fichier trié. */
+        void entete(String ligne) {
+            offset += ligne.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        /**
+         * Signale un n-uplet écrit dans le fichier trié.
+         *
+         * @param nuplet le n-uplet
+         * @param ligne  la ligne écrite (fin de ligne comprise)
+         */
+        void ajouter(String[] nuplet, String ligne) throws IOException {
+            if (lignes % PAS == 0) {
+                fw.append(Long.toString(offset));
+                for (int index : indices)
+                    fw.append(';').append(nuplet[index] == null ? "" : nuplet[index]);
+                fw.append('\n');
+            }
+            lignes++;
+            offset += ligne.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            fw.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Le premier argument est un fichier CSV trié (avec son .idx)");
+            System.out.println("Le deuxième argument est la borne basse (valeurs des colonnes de tri)");
+            System.out.println("Le troisième argument (optionnel) est la borne haute, sinon = borne basse");
+            return;
+        }
+
+        long t1 = System.currentTimeMillis();
+
+        IndexEpars index = new IndexEpars(args[0]);
+        String[] bas = args[1].split(";", -1);
+        String[] haut = (args.length >= 3) ? args[2].split(";", -1) : bas;
+
+        int n = index.rechercher(bas, haut, nuplet -> System.out.println(String.join(";", nuplet)));
+
+        System.out.println("[Index] " + n + " n-uplet(s) trouvé(s).");
+        System.out.println("Temps d'éxécution : " + (System.currentTimeMillis() - t1) + "ms");
+    }
+}
@@ -7,7 +7,8 @@
  * - Trie les lignes selon une ou plusieurs colonnes (comme ORDER BY en SQL).
  * - Utilise un tri externe avec un cache de taille M (nombre de lignes).
  * - Génère des fragments triés, puis les fusionne par groupes de (M-1).
- * - Produit un fichier trié final.
+ * - Produit un fichier trié final (et son index épars, voir IndexEpars).
+ * - Lit et écrit tous les fichiers (fragments, sortie, index) en UTF-8.
  * - Nettoie les fragments temporaires après usage.
  * - Permet de gérer des fichiers plus grands que la mémoire disponible.
  * 
@@ -71,12 +72,20 @@ public class TriExterne {
     // size of the cache in number of n-uplet
     // M >= 3
     public static int M = 10;
+    // répertoires racines de débordement (un par disque), fragments répartis dessus
+    // ex: { "/mnt/d1/tmp", "/mnt/d2/tmp" } ; par défaut un seul : tmp/
+    public static String[] SPILL = { "tmp" };
     public final String[][] cache; // cache en mémoire pour stocker temporairement les lignes
+    private final int[] codes; // offsets (codage offset-valeur) des n-uplets du cache (fusion)
+    private final long[] valeursCode; // valeur de la colonne codes[j] (voir Comparateur.valeurCode)
     public final String path; // chemin du fichier CSV à trier
     public final String[] entete; // liste des noms de colonnes du fichier CSV
     public final Comparateur comparateur; // comparateur pour trier les lignes selon les colonnes demandées
+    private final TriRadix radix; // tri par base si aucune clé TXT (null sinon)
 
-    private final Path runDir; // tmp/fragments/run_YYYYMMDD_HHMMSS
+    private final Path[] runDirs; // <spill>/fragments/run_YYYYMMDD_HHMMSS (un par racine)
+    private final List<List<Integer>> placement = new ArrayList<>(); // [niveau][numero] -> indice dans runDirs
+    private final int[] sorties; // fragments de sortie placés par répertoire (passe de fusion en cours)
     private final Path outputDir; // output/
 
     /**
@@ -116,10 +125,29 @@ public class TriExterne {
             this.entete = headerLine.split(";", -1);
         }
 
-        this.runDir = createRunDir();
+        this.runDirs = createRunDirs();
+        this.sorties = new int[runDirs.length];
         this.outputDir = Paths.get("output");
 
-        // Résoudre indices
+        int[] indices = resoudreIndices(entete, colonnes);
+        Comparateur.Type[] types = resoudreTypes(typesCsvOuNull, colonnes.length);
+
+        this.comparateur = new Comparateur(indices, types);
+        this.cache = new String[M][entete.length];
+        this.codes = new int[M];
+        this.valeursCode = new long[M];
+        this.radix = TriRadix.applicable(comparateur) ? new TriRadix(comparateur, M) : null;
+    }
+
+    /**
+     * Résout la position de chaque colonne demandée dans l'entête.
+     * 
+     * @param entete   les noms de colonnes du fichier CSV
+     * @param colonnes les colonnes demandées (ordre de priorité)
+     * @return les indices correspondants dans l'entête
+     * @throws RuntimeException si une colonne n'existe pas dans l'entête
+     */
+    static int[] resoudreIndices(String[] entete, String[] colonnes) {
         int[] indices = new int[colonnes.length];
         for (int i = 0; i < colonnes.length; i++) {
             indices[i] = -1;
@@ -132,18 +160,28 @@ public class TriExterne {
             if (indices[i] == -1)
                 throw new RuntimeException("Colonne inconnue dans l'entête: " + colonnes[i]);
         }
+        return indices;
+    }
 
-        // Types: si null/vides => AUTO, sinon parse "NUM;TXT;..."
+    /**
+     * Types: si null/vides => AUTO, sinon parse "NUM;TXT;..."
+     * 
+     * @param typesCsvOuNull les types séparés par ';' (ou null)
+     * @param n              le nombre de colonnes attendu
+     * @return un type par colonne
+     * @throws IllegalArgumentException si le nombre ou un nom de type est invalide
+     */
+    static Comparateur.Type[] resoudreTypes(String typesCsvOuNull, int n) {
         Comparateur.Type[] types;
         if (typesCsvOuNull == null || typesCsvOuNull.trim().isEmpty()) {
-            types = new Comparateur.Type[colonnes.length];
+            types = new Comparateur.Type[n];
             Arrays.fill(types, Comparateur.Type.AUTO);
         } else {
             String[] ts = Arrays.stream(typesCsvOuNull.split(";"))
                     .map(String::trim)
                     .filter(s -> !s.isEmpty())
                     .toArray(String[]::new);
-            if (ts.length != colonnes.length) {
+            if (ts.length != n) {
                 throw new IllegalArgumentException(
                         "Le nombre de types doit égaler le nombre de colonnes. Ex: \"TXT;NUM\"");
             }
@@ -160,9 +198,7 @@ public class TriExterne {
                     throw new IllegalArgumentException("Type inconnu: " + ts[i] + " (attendu NUM/TXT/AUTO)");
             }
         }
-
-        this.comparateur = new Comparateur(indices, types);
-        this.cache = new String[M][entete.length];
+        return types;
     }
 
     /**
@@ -187,17 +223,32 @@ public class TriExterne {
 
         int niveau = 0;
         int courant = nFragments;
+        ensureOutputDir();
+        Path finalOutput = outputDir.resolve("sorted.csv");
+        String idxName = IndexEpars.nomIndex(finalOutput.toString());
 
         // Passes successives de fusion jusqu'à 1 fragment
         while (courant > 1) {
             int produits = 0;
 
+            // Dernière passe : CSV sans codes, et la fusion écrit aussi l'index épars
+            boolean finale = (courant <= M - 1);
+            IndexEpars.Ecrivain index = finale
+                    ? new IndexEpars.Ecrivain(idxName, entete, comparateur)
+                    : null;
+
             // Fusion par groupes de (M-1) fragments
-            for (int debut = 0; debut < courant; debut += (M - 1)) {
-                int nb = Math.min(M - 1, courant - debut);
-                // fragment_{niveau}_{debut .. debut+nb-1} -> fragment_{niveau+1}_{produits}
-                fusionGroupe(niveau, debut, nb, produits);
-                produits++;
+            try {
+                for (int debut = 0; debut < courant; debut += (M - 1)) {
+                    int nb = Math.min(M - 1, courant - debut);
+                    // fragment_{niveau}_{debut .. debut+nb-1} -> fragment_{niveau+1}_{produits}
+                    placer(niveau + 1, produits, choisirRepertoire(niveau, debut, nb, produits));
+                    fusionGroupe(niveau, debut, nb, produits, finale, index);
+                    produits++;
+                }
+            } finally {
+                if (index != null)
+                    index.close();
             }
 
             System.out.println("[Fusion] Niveau " + (niveau + 1) + " : " + produits + " fragment(s) créé(s).");
@@ -212,11 +263,39 @@ public class TriExterne {
         }
 
         System.out.println("[Terminé] Fichier trié : " + nomDeFragment(niveau, 0));
-        ensureOutputDir();
         Path finalFragment = Paths.get(nomDeFragment(niveau, 0));
-        Path finalOutput = outputDir.resolve("sorted.csv");
-        Files.copy(finalFragment, finalOutput, StandardCopyOption.REPLACE_EXISTING);
+        if (niveau == 0) {
+            // Aucune fusion (un seul fragment) : on retire les codes et on construit l'index
+            finaliserFragment(finalFragment, finalOutput, idxName);
+        } else {
+            Files.copy(finalFragment, finalOutput, StandardCopyOption.REPLACE_EXISTING);
+        }
         System.out.println("[Sortie] Fichier final : " + finalOutput.toString());
+        System.out.println("[Sortie] Index épars  : " + idxName);
+    }
+
+    /**
+     * Écrit le fichier final à partir d'un fragment de niveau 0 (cas sans fusion :
+     * au plus M lignes) : retire les codes offset-valeur et construit l'index
+     * épars.
+     * 
+     * @param fragment le fragment trié (avec codes)
+     * @param sortie   le fichier CSV final
+     * @param idxName  le fichier index à créer
+     * @throws IOException en cas d'erreur d'E/S
+     */
+    private void finaliserFragment(Path fragment, Path sortie, String idxName) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(fragment, StandardCharsets.UTF_8);
+                FileWriter fw = new FileWriter(sortie.toString(), StandardCharsets.UTF_8);
+                IndexEpars.Ecrivain index = new IndexEpars.Ecrivain(idxName, entete, comparateur)) {
+            reader.readLine(); // entête du fragment
+            index.entete(ecrireLigneCSV(fw, entete));
+            String ligne;
+            while ((ligne = reader.readLine()) != null) {
+                String[] nuplet = nupletDepuis(ligne.substring(ligne.indexOf(';', ligne.indexOf(';') + 1) + 1));
+                index.ajouter(nuplet, ecrireLigneCSV(fw, nuplet));
+            }
+        }
     }
 
     /**
@@ -254,12 +333,16 @@ public class TriExterne {
      * <p>
      * - Arrays.sort(array,0,taille ,comparateur) permet de trier une partie d'un
      * tableau
+     * - si les clés sont toutes numériques (NUM/AUTO), un tri par base sur des
+     * long évite de reconvertir les chaînes à chaque comparaison
      * </p>
      * 
      * @param taille le nombre d'éléments à trier (<= M)
      */
     private void trierCache(int taille) {
-        Arrays.sort(cache, 0, taille, comparateur);
+        if (radix != null && radix.trier(cache, taille))
+            return;
+        Arrays.sort(cache, 0, taille, comparateur); // repli : valeur non numérique
     }
 
     /**
@@ -267,11 +350,31 @@ public class TriExterne {
      * 
      * @param fw      le FileWriter du fichier CSV
      * @param valeurs le nuplet (tableau de String)
+     * @return la ligne écrite (fin de ligne comprise)
      * @throws IOException si une erreur d'écriture dans le fichier se produit
      */
-    private static void ecrireLigneCSV(FileWriter fw, String[] valeurs) throws IOException {
+    private static String ecrireLigneCSV(FileWriter fw, String[] valeurs) throws IOException {
+        return ecrireLigneCSV(fw, -1, 0, valeurs);
+    }
+
+    /**
+     * écrit une ligne de fragment : le code offset-valeur en deux premiers champs
+     * (fragments intermédiaires), puis les valeurs
+     * 
+     * @param fw      le FileWriter du fichier CSV
+     * @param code    l'offset du code, ou -1 pour une ligne CSV simple
+     * @param valeur  la valeur du code (Comparateur.valeurCode)
+     * @param valeurs le nuplet (tableau de String)
+     * @return la ligne écrite (fin de ligne comprise)
+     * @throws IOException si une erreur d'écriture dans le fichier se produit
+     */
+    private static String ecrireLigneCSV(FileWriter fw, int code, long valeur, String[] valeurs)
+            throws IOException {
         StringBuilder lineBuilder = new StringBuilder();
 
+        if (code >= 0) {
+            lineBuilder.append(code).append(';').append(valeur).append(';');
+        }
         for (int i = 0; i < valeurs.length; i++) {
             if (i > 0) {
                 lineBuilder.append(';');
@@ -281,7 +384,9 @@ public class TriExterne {
         }
         lineBuilder.append('\n');
 
-        fw.append(lineBuilder);
+        String ligne = lineBuilder.toString();
+        fw.append(ligne);
+        return ligne;
     }
 
     /**
@@ -303,14 +408,21 @@ public class TriExterne {
         if (taille < 0 || taille > M) {
             throw new IllegalArgumentException("taille doit etre dans l'intervalle [0, M]");
         }
-        try (FileWriter fw = new FileWriter(path)) {
+        try (FileWriter fw = new FileWriter(path, StandardCharsets.UTF_8)) {
             // Ecrire Entete
             ecrireLigneCSV(fw, entete);
 
-            // Ecrire premeir n(taille) ligne
+            // Ecrire premeir n(taille) ligne, précédée de son code offset-valeur :
+            // première colonne de tri qui diffère du n-uplet précédent (0 pour le premier)
+            // et la valeur de cette colonne
+            int arite = comparateur.indices.length;
+            String[] precedent = null;
             for (int i = 0; i < taille; i++) {
                 if (cache[i] != null) {
-                    ecrireLigneCSV(fw, cache[i]);
+                    int code = (precedent == null) ? 0 : comparateur.premiereDifference(precedent, cache[i], 0);
+                    long valeur = (code < arite) ? comparateur.valeurCode(cache[i], code) : 0;
+                    ecrireLigneCSV(fw, code, valeur, cache[i]);
+                    precedent = cache[i];
                 }
             }
         }
@@ -341,6 +453,7 @@ public class TriExterne {
 
                 if (fill == M) {
                     trierCache(fill);
+                    placer(0, numFragment, (numFragment / (M - 1)) % runDirs.length);
                     String fragName = nomDeFragment(0, numFragment++);
                     sauvegardeCache(fragName, entete, fill);
                     fill = 0;
@@ -349,6 +462,7 @@ public class TriExterne {
 
             if (fill > 0) {
                 trierCache(fill);
+                placer(0, numFragment, (numFragment / (M - 1)) % runDirs.length);
                 String fragName = nomDeFragment(0, numFragment++);
                 sauvegardeCache(fragName, entete, fill);
             }
@@ -365,14 +479,25 @@ public class TriExterne {
      *
      * Hypothèse locale : nombre <= M-1 (cache[M-1] sert de tampon).
      *
+     * <p>
+     * Codage offset-valeur : codes[j] est la première colonne de tri où cache[j]
+     * diffère du dernier n-uplet écrit (toutes les têtes sont codées par rapport
+     * à lui), et valeursCode[j] la valeur de cette colonne. Un offset plus grand
+     * signifie un n-uplet plus petit ; à offset égal, les valeurs (long) décident,
+     * et les chaînes ne sont comparées que si elles ne suffisent pas.
+     * </p>
+     *
      * @param niveau   le niveau des fragments d'entrée
      * @param debut    l'indice du premier fragment d'entrée à fusionner
      * @param nombre   le nombre de fragments à fusionner (<= M-1)
      * @param outIndex l'indice du fragment de sortie au niveau (niveau+1)
+     * @param finale   true pour la dernière passe (sortie CSV sans codes)
+     * @param index    l'écrivain d'index épars (dernière passe), ou null
      * @return 1 si au moins un n-uplet a été écrit, 0 sinon
      * @throws IOException en cas d'erreur d'E/S
      */
-    private int fusionGroupe(int niveau, int debut, int nombre, int outIndex) throws IOException {
+    private int fusionGroupe(int niveau, int debut, int nombre, int outIndex, boolean finale,
+            IndexEpars.Ecrivain index) throws IOException {
         if (nombre <= 0)
             return 0;
         if (nombre > M - 1)
@@ -388,26 +513,29 @@ public class TriExterne {
 
             // 2) Préparer la sortie
             String outName = nomDeFragment(niveau + 1, outIndex);
-            try (FileWriter fw = new FileWriter(outName)) {
+            try (FileWriter fw = new FileWriter(outName, StandardCharsets.UTF_8)) {
 
                 // Écrire l’entête en sortie
-                ecrireLigneCSV(fw, entete);
+                String ligneEntete = ecrireLigneCSV(fw, entete);
+                if (index != null)
+                    index.entete(ligneEntete);
 
                 // 3) Charger le premier n-uplet de chaque entrée dans cache[0..nombre-1]
+                // (code 0 : premier n-uplet de chaque fragment, aucun n-uplet encore écrit)
                 for (int j = 0; j < nombre; j++) {
                     brs[j].readLine(); // sauter l’entête du fragment d’entrée
-                    String ligne = brs[j].readLine();
-                    cache[j] = (ligne == null) ? null : nupletDepuis(ligne);
+                    lireNupletCode(brs[j], j);
                 }
 
                 // 4) Boucle de fusion
+                int arite = comparateur.indices.length;
                 boolean aEcrit = false;
                 while (true) {
                     int iMin = -1;
                     for (int j = 0; j < nombre; j++) {
                         if (cache[j] == null)
                             continue;
-                        if (iMin == -1 || comparateur.compare(cache[j], cache[iMin]) < 0) {
+                        if (iMin == -1 || compareCodes(j, iMin) < 0) {
                             iMin = j;
                         }
                     }
@@ -416,14 +544,32 @@ public class TriExterne {
 
                     // Utiliser la dernière case du cache (index M-1) comme tampon
                     cache[M - 1] = cache[iMin];
+                    int code = codes[iMin]; // offset par rapport au n-uplet écrit précédent
+                    long valeur = valeursCode[iMin];
 
                     // Écrire le n-uplet minimal
-                    ecrireLigneCSV(fw, cache[M - 1]);
+                    String ligneSortie = ecrireLigneCSV(fw, finale ? -1 : code, valeur, cache[M - 1]);
+                    if (index != null)
+                        index.ajouter(cache[M - 1], ligneSortie);
                     aEcrit = true;
 
-                    // Avancer dans la source du minimum
-                    String ligne = brs[iMin].readLine();
-                    cache[iMin] = (ligne == null) ? null : nupletDepuis(ligne);
+                    // Recoder les autres têtes par rapport au n-uplet écrit : seules celles
+                    // de même offset peuvent changer (un offset plus petit reste valable),
+                    // et pas si leur valeur diffère déjà de celle du n-uplet écrit
+                    for (int j = 0; j < nombre; j++) {
+                        if (j == iMin || cache[j] == null || codes[j] != code || code == arite)
+                            continue;
+                        if (Comparateur.compareValeursCode(valeursCode[j], valeur) != 0)
+                            continue;
+                        int offset = comparateur.premiereDifference(cache[j], cache[M - 1], code);
+                        if (offset != code) {
+                            codes[j] = offset;
+                            valeursCode[j] = (offset < arite) ? comparateur.valeurCode(cache[j], offset) : 0;
+                        }
+                    }
+
+                    // Avancer dans la source du minimum (son code est déjà relatif au n-uplet écrit)
+                    lireNupletCode(brs[iMin], iMin);
                 }
 
                 return aEcrit ? 1 : 0;
@@ -443,15 +589,61 @@ public class TriExterne {
         }
     }
 
-    private static Path createRunDir() {
+    /**
+     * Crée un dossier run_YYYYMMDD_HHMMSS sous chaque racine de SPILL.
+     * 
+     * @return les dossiers de fragments, dans l'ordre de SPILL
+     */
+    private static Path[] createRunDirs() {
+        if (SPILL == null || SPILL.length == 0) {
+            throw new IllegalArgumentException("SPILL doit contenir au moins un répertoire");
+        }
         String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        Path dir = Paths.get("tmp", "fragments", "run_" + stamp);
-        try {
-            Files.createDirectories(dir);
-        } catch (IOException e) {
-            throw new RuntimeException("Impossible de créer le dossier run: " + dir, e);
+        Path[] dirs = new Path[SPILL.length];
+        for (int i = 0; i < SPILL.length; i++) {
+            Path dir = Paths.get(SPILL[i], "fragments", "run_" + stamp);
+            try {
+                Files.createDirectories(dir);
+            } catch (IOException e) {
+                throw new RuntimeException("Impossible de créer le dossier run: " + dir, e);
+            }
+            dirs[i] = dir;
+        }
+        return dirs;
+    }
+
+    /**
+     * Compare les têtes cache[i] et cache[j], codées par rapport au même n-uplet.
+     * 
+     * @return négatif si cache[i] < cache[j], 0 si égales, positif sinon
+     */
+    private int compareCodes(int i, int j) {
+        if (codes[i] != codes[j])
+            return (codes[i] > codes[j]) ? -1 : 1; // diffère plus tard => plus petit
+        if (codes[i] == comparateur.indices.length)
+            return 0; // toutes deux égales au n-uplet de référence
+        int c = Comparateur.compareValeursCode(valeursCode[i], valeursCode[j]);
+        if (c != 0)
+            return c; // décidé par la valeur : une seule comparaison d'entiers
+        return comparateur.compareDepuis(cache[i], cache[j], codes[i]);
+    }
+
+    /**
+     * Lit le n-uplet suivant d'un fragment intermédiaire
+     * ("offset;valeur;colonnes...") dans cache[j], codes[j] et valeursCode[j]
+     * (cache[j] = null en fin de fragment).
+     */
+    private void lireNupletCode(BufferedReader br, int j) throws IOException {
+        String ligne = br.readLine();
+        if (ligne == null) {
+            cache[j] = null;
+            return;
         }
-        return dir;
+        int sep1 = ligne.indexOf(';');
+        int sep2 = ligne.indexOf(';', sep1 + 1);
+        codes[j] = Integer.parseInt(ligne.substring(0, sep1));
+        valeursCode[j] = Long.parseLong(ligne.substring(sep1 + 1, sep2));
+        cache[j] = nupletDepuis(ligne.substring(sep2 + 1));
     }
 
     private static void ensureOutputDir() {
@@ -468,13 +660,70 @@ public class TriExterne {
 
     /**
      * Nom du fichier fragment pour un niveau et un numéro donné
+     * (dans le répertoire de débordement choisi par placer)
      * 
      * @param niveau le niveau de fusion
      * @param numero le numéro du fragment
      * @return le nom du fichier fragment
      */
     private String nomDeFragment(int niveau, int numero) {
-        return runDir.resolve(String.format("fragment_%s_%s.csv", niveau, numero)).toString();
+        Path dir = runDirs[placement.get(niveau).get(numero)];
+        return dir.resolve(String.format("fragment_%s_%s.csv", niveau, numero)).toString();
+    }
+
+    /**
+     * Enregistre le répertoire de débordement du fragment (niveau, numero).
+     * Les fragments d'un niveau sont placés dans l'ordre des numéros.
+     */
+    private void placer(int niveau, int numero, int rep) {
+        while (placement.size() <= niveau)
+            placement.add(new ArrayList<>());
+        List<Integer> reps = placement.get(niveau);
+        if (numero < reps.size())
+            reps.set(numero, rep); // nouvel appel à trier() : on remplace
+        else
+            reps.add(rep);
+    }
+
+    /**
+     * Choisit le répertoire de sortie d'une fusion : celui qui contient le moins
+     * de ses fragments d'entrée (aucun si possible), pour que lectures et
+     * écritures portent sur des disques différents. À égalité, celui qui a reçu
+     * le moins de fragments de sortie à ce niveau, puis à tour de rôle à partir
+     * de (outIndex + 1) : les écritures d'une passe restent réparties.
+     * <p>
+     * Au niveau 0, les fragments sont placés à tour de rôle par groupe de (M-1)
+     * (un groupe de fusion par répertoire) : chaque fusion du niveau 1 lit donc
+     * un seul disque et écrit sur un autre.
+     * </p>
+     * 
+     * @param niveau   le niveau des fragments d'entrée
+     * @param debut    l'indice du premier fragment d'entrée
+     * @param nombre   le nombre de fragments d'entrée
+     * @param outIndex l'indice du fragment de sortie au niveau (niveau+1)
+     * @return         l'indice du répertoire dans runDirs
+     */
+    private int choisirRepertoire(int niveau, int debut, int nombre, int outIndex) {
+        int n = runDirs.length;
+        int[] entrees = new int[n];
+        List<Integer> reps = placement.get(niveau);
+        for (int j = 0; j < nombre; j++)
+            entrees[reps.get(debut + j)]++;
+
+        // fragments de sortie déjà placés à ce niveau (numéros 0..outIndex-1)
+        if (outIndex == 0)
+            Arrays.fill(sorties, 0);
+
+        int premier = (outIndex + 1) % n;
+        int choix = premier;
+        for (int d = 1; d < n; d++) {
+            int r = (premier + d) % n;
+            if (entrees[r] < entrees[choix]
+                    || (entrees[r] == entrees[choix] && sorties[r] < sorties[choix]))
+                choix = r;
+        }
+        sorties[choix]++;
+        return choix;
     }
 
     /**
@@ -538,6 +787,15 @@ public class TriExterne {
 
         String typesCsv = (args.length >= 3) ? args[2] : null; // null => AUTO
 
+        // Répertoires de débordement (optionnel) : -Dtri.spill="/mnt/d1/tmp;/mnt/d2/tmp"
+        String spill = System.getProperty("tri.spill");
+        if (spill != null && !spill.trim().isEmpty()) {
+            SPILL = Arrays.stream(spill.split(";"))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .toArray(String[]::new);
+        }
+
         TriExterne algo = new TriExterne(fichier, cols, typesCsv);
 
         algo.trier();
@@ -0,0 +1,143 @@
+/**
+ * TriRadix.java
+ *
+ * Tri par base (radix sort LSD) du cache quand toutes les clés de tri sont
+ * numériques : les clés sont extraites une seule fois dans des long[], on trie
+ * une permutation d'indices, puis on réordonne les n-uplets.
+ *
+ * @author Erkin Tunc BOYA
+ * @version 1.0
+ * @since   2025-10-01
+ */
+
+package tri_externe;
+
+import java.util.Arrays;
+
+/**
+ * Même ordre que {@link Comparateur} (et stable, comme Arrays.sort) lorsque
+ * chaque valeur des colonnes de tri est vide ou une suite de chiffres :
+ * - vide/null codé 0 (plus petit),
+ * - valeur numérique v codée v + 1.
+ *
+ * Si une valeur n'est pas numérique (ex: CODDEP "2A"), ou trop longue pour un
+ * long, le tri n'est pas applicable : l'appelant revient au comparateur (repli
+ * texte), car l'ordre mixte numérique/lexicographique ne se code pas en entier.
+ */
+class TriRadix {
+
+    /** au-delà, la valeur (+1) pourrait dépasser Long.MAX_VALUE */
+    private static final int MAX_CHIFFRES = 18;
+
+    /** indices des colonnes de tri, dans l’ordre de priorité */
+    private final int[] indices;
+
+    /** clés codées : cles[k][i] = colonne k du n-uplet i */
+    private final long[][] cles;
+
+    /** permutation courante et tampon du tri par comptage */
+    private final int[] perm, tmp;
+
+    /** tampon pour réordonner les n-uplets */
+    private final String[][] lignes;
+
+    /**
+     * @param comparateur le comparateur dont on reproduit l'ordre
+     * @param capacite    le nombre maximal de n-uplets à trier (M)
+     */
+    TriRadix(Comparateur comparateur, int capacite) {
+        this.indices = comparateur.indices;
+        this.cles = new long[indices.length][capacite];
+        this.perm = new int[capacite];
+        this.tmp = new int[capacite];
+        this.lignes = new String[capacite][];
+    }
+
+    /**
+     * Le tri par base n'a de sens que si aucune colonne n'est forcée en TXT
+     * (NUM et AUTO comparent numériquement deux valeurs numériques).
+     */
+    static boolean applicable(Comparateur comparateur) {
+        for (Comparateur.Type type : comparateur.types) {
+            if (type == Comparateur.Type.TXT)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Trie t[0..taille-1] si toutes les clés sont numériques ou vides.
+     *
+     * @param t      le tableau de n-uplets
+     * @param taille le nombre d'éléments à trier
+     * @return true si le tableau a été trié, false s'il faut utiliser le
+     *         comparateur (valeur non numérique rencontrée)
+     */
+    boolean trier(String[][] t, int taille) {
+        // 1) Extraire les clés (une seule conversion par valeur)
+        long[] max = new long[indices.length];
+        for (int k = 0; k < indices.length; k++) {
+            long[] col = cles[k];
+            int index = indices[k];
+            for (int i = 0; i < taille; i++) {
+                long v = coder(t[i][index]);
+                if (v < 0)
+                    return false; // non numérique => repli comparateur
+                col[i] = v;
+                if (v > max[k])
+                    max[k] = v;
+            }
+        }
+
+        // 2) LSD : de la dernière colonne à la première, octet par octet
+        int[] src = perm, dst = tmp;
+        for (int i = 0; i < taille; i++)
+            src[i] = i;
+        int[] compte = new int[257];
+        for (int k = indices.length - 1; k >= 0; k--) {
+            long[] col = cles[k];
+            for (int shift = 0; shift < 64 && (max[k] >>> shift) != 0; shift += 8) {
+                Arrays.fill(compte, 0);
+                for (int i = 0; i < taille; i++)
+                    compte[(int) ((col[src[i]] >>> shift) & 0xFF) + 1]++;
+                for (int b = 0; b < 256; b++)
+                    compte[b + 1] += compte[b];
+                for (int i = 0; i < taille; i++)
+                    dst[compte[(int) ((col[src[i]] >>> shift) & 0xFF)]++] = src[i];
+                int[] s = src;
+                src = dst;
+                dst = s;
+            }
+        }
+
+        // 3) Réordonner les n-uplets selon la permutation
+        for (int i = 0; i < taille; i++)
+            lignes[i] = t[src[i]];
+        for (int i = 0; i < taille; i++) {
+            t[i] = lignes[i];
+            lignes[i] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Code une valeur : 0 si vide/null, v + 1 si numérique, -1 sinon.
+     */
+    private static long coder(String s) {
+        if (s == null)
+            return 0;
+        s = s.trim();
+        if (s.isEmpty())
+            return 0;
+        if (s.length() > MAX_CHIFFRES)
+            return -1;
+        long v = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch < '0' || ch > '9')
+                return -1;
+            v = v * 10 + (ch - '0');
+        }
+        return v + 1;
+    }
+}